@@ -2,8 +2,10 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.zip.CRC32;
 
 /**
  * Decodes a file created with HuffmanEncode.java class.
@@ -13,32 +15,74 @@ import java.util.List;
  */
 public class HuffmanDecode {
 
+    // Largest block size accepted from a header, well above the 64 KiB HuffmanEncode writes
+    private static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
     private String fileName;
     private long fileLength;
     private int numberOfSymbols;
+    private int blockSize;
+    private int[] blockChecksums;
+    private CRC32 headerChecksum;
     private HashMap<String, Integer> encodedBytes;
-    private List<Integer> fileBody;
+    private byte[] fileBody;
+    private List<Integer> damagedBlocks;
 
     /**
      * Class constructor. Reads the File Header Info from the file (encodedFileName)
      * and stores that information appropriately.
+     * The header is validated and checked against its CRC32 before the file body is read, and
+     * every block of the file body is then checked against its own CRC32.
      *
      * @param encodedFileName the file to decode
+     * @throws IllegalArgumentException if the file can't be read, or its header is truncated or corrupt
      */
     public HuffmanDecode(String encodedFileName) {
         fileName = encodedFileName;
-        List<Integer> fileBytes = extractBytes(fileName);
-        int currentIndex = readFileHeader(fileBytes, 0);
-        currentIndex = readSymbolCodes(fileBytes, currentIndex);
-        fileBody = new ArrayList<>(fileBytes.subList(currentIndex, fileBytes.size()));
+        File encodedFile = new File(fileName);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(encodedFile)))) {
+            headerChecksum = new CRC32();
+            int currentIndex = readFileHeader(input, 0);
+            currentIndex = readSymbolCodes(input, currentIndex);
+            currentIndex = readBlockChecksums(input, currentIndex, encodedFile.length());
+            currentIndex = readHeaderChecksum(input, currentIndex);
+            readBody(input, encodedFile.length() - currentIndex);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read " + fileName, e);
+        }
+        verifyBlocks();
+    }
+
+    /**
+     * Gets the blocks of the file body that failed their checksum, or are missing from the file,
+     * when the file was opened. Only these blocks need to be fetched again to repair the file.
+     *
+     * @return the indexes of the damaged blocks, empty if the file is intact
+     */
+    public List<Integer> getDamagedBlocks() {
+        return Collections.unmodifiableList(damagedBlocks);
+    }
+
+    /**
+     * Gets the number of encoded body bytes covered by each block checksum
+     *
+     * @return the block size in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
     }
 
     /**
      * Reads the encoded file bits and writes out a decoded file
      *
      * @param decodedFileName The name of the file to write the decoded bits too.
+     * @throws IllegalStateException if any block of the file body is damaged, or the body
+     *     runs out before the whole original file has been decoded
      */
     public void readFromFile(String decodedFileName) {
+        if (!damagedBlocks.isEmpty()) {
+            throw new IllegalStateException("Corrupt file " + fileName + ": damaged blocks " + damagedBlocks);
+        }
 
         // Decode the file body
         List<Integer> decodedFileBytes = readFileBody(fileBody);
@@ -61,74 +105,147 @@ public class HuffmanDecode {
         }
     }
 
-    /*
-     * Reads a file and return a List<Integers> it contains (treating them as bytes)
-     */
-    private List<Integer> extractBytes(String fileName) {
-        try {
-            FileInputStream fileInputStream = new FileInputStream(fileName);
-            ArrayList<Integer> bytes = new ArrayList<>();
-            int nextByte = fileInputStream.read();
-            while (nextByte != -1) {
-                bytes.add(nextByte);
-                nextByte = fileInputStream.read();
-            }
-            return bytes;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
     /*
      * Reads the data from the file header portion of the encoded file
      */
-    private int readFileHeader(List<Integer> fileBytes, int currentIndex) {
+    private int readFileHeader(DataInputStream input, int currentIndex) throws IOException {
         // Grab the bytes that represent the long fileLength value
-        byte[] fileLengthBytes = new byte[Long.BYTES];
-        for (int i = 0; i < fileLengthBytes.length; i++) {
-            fileLengthBytes[i] = fileBytes.get(currentIndex++).byteValue();
-        }
+        byte[] fileLengthBytes = readHeaderBytes(input, Long.BYTES, "file header");
         // Grab the bytes that represent the int numberOfSybmols value
-        byte[] numberOfSymbolsBytes = new byte[Integer.BYTES];
-        for (int i = 0; i < numberOfSymbolsBytes.length; i++) {
-            numberOfSymbolsBytes[i] = fileBytes.get(currentIndex++).byteValue();
-        }
+        byte[] numberOfSymbolsBytes = readHeaderBytes(input, Integer.BYTES, "file header");
 
         // Convert fileLengthBytes array to long
         fileLength = bytesToLong(fileLengthBytes);
         // Convert numberOfSymbolBytes array to int
         numberOfSymbols = bytesToInt(numberOfSymbolsBytes);
 
+        // There is at most one symbol per byte value, and only an empty file has none
+        if (fileLength < 0 || numberOfSymbols < 0 || numberOfSymbols > 256
+                || (fileLength == 0) != (numberOfSymbols == 0)) {
+            throw new IllegalArgumentException("Corrupt file " + fileName + ": length " + fileLength
+                    + " with " + numberOfSymbols + " symbols");
+        }
+
         // Increment the index to be at the start of the symbols
-        return currentIndex;
+        return currentIndex + Long.BYTES + Integer.BYTES;
     }
 
     /*
      * Reads in the huffman codes and stores them in a HashMap
      */
-    private int readSymbolCodes(List<Integer> fileBytes, int currentIndex) {
+    private int readSymbolCodes(DataInputStream input, int currentIndex) throws IOException {
         encodedBytes = new HashMap<>();
         for (int i = 0; i < numberOfSymbols; i++) {
-            // Get the symbol, stored as just one byte
-            byte symbolValue = fileBytes.get(currentIndex++).byteValue();
-            // Get the lengh of the code, just one byte
-            byte codeLength = fileBytes.get(currentIndex++).byteValue();
-            // Get enough bytes to store the code
-            byte[] codeBytes = new byte[(int) Math.ceil(codeLength / 8.0f)];
-            for (int j = 0; j < codeBytes.length; j++) {
-                codeBytes[j] = fileBytes.get(currentIndex++).byteValue();
+            // Get the symbol and the length of its code, one byte each
+            byte[] symbolBytes = readHeaderBytes(input, 2, "symbol " + i);
+            byte symbolValue = symbolBytes[0];
+            // The code length is read unsigned
+            int codeLength = symbolBytes[1] & 0xFF;
+            // Only a file made of a single repeated symbol has an empty code
+            if (codeLength == 0 && numberOfSymbols != 1) {
+                throw new IllegalArgumentException("Corrupt file " + fileName + ": empty code for symbol " + i);
             }
+            // Get enough bytes to store the code
+            byte[] codeBytes = readHeaderBytes(input, (int) Math.ceil(codeLength / 8.0f), "code for symbol " + i);
+            currentIndex += symbolBytes.length + codeBytes.length;
             // Convert into a string
             String code = readBytesToCode(codeBytes, codeLength);
-            // Store in HashMap
-            encodedBytes.put(code, new Integer(symbolValue));
+            // Store in HashMap, two symbols sharing a code can't be decoded
+            if (encodedBytes.put(code, new Integer(symbolValue)) != null) {
+                throw new IllegalArgumentException("Corrupt file " + fileName + ": duplicate code " + code);
+            }
         }
         return currentIndex;
     }
 
+    /*
+     * Reads the block size and the CRC32 of each block of the file body
+     */
+    private int readBlockChecksums(DataInputStream input, int currentIndex, long encodedFileLength)
+            throws IOException {
+        blockSize = bytesToInt(readHeaderBytes(input, Integer.BYTES, "block checksum table"));
+        int numberOfBlocks = bytesToInt(readHeaderBytes(input, Integer.BYTES, "block checksum table"));
+        currentIndex += 2 * Integer.BYTES;
+        // Check the table fits in the file before allocating room for it
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE || numberOfBlocks < 0
+                || (long) numberOfBlocks * Integer.BYTES > encodedFileLength - currentIndex) {
+            throw new IllegalArgumentException("Corrupt file " + fileName + ": " + numberOfBlocks
+                    + " blocks of " + blockSize + " bytes");
+        }
+
+        blockChecksums = new int[numberOfBlocks];
+        for (int i = 0; i < numberOfBlocks; i++) {
+            blockChecksums[i] = bytesToInt(readHeaderBytes(input, Integer.BYTES, "block checksums"));
+        }
+        return currentIndex + numberOfBlocks * Integer.BYTES;
+    }
+
+    /*
+     * Checks the CRC32 of everything read so far against the one stored at the end of the header
+     */
+    private int readHeaderChecksum(DataInputStream input, int currentIndex) throws IOException {
+        int expectedChecksum = (int) headerChecksum.getValue();
+        int storedChecksum = bytesToInt(readHeaderBytes(input, Integer.BYTES, "header checksum"));
+        if (expectedChecksum != storedChecksum) {
+            throw new IllegalArgumentException("Corrupt file " + fileName + ": header checksum mismatch");
+        }
+        return currentIndex + Integer.BYTES;
+    }
+
+    /*
+     * Reads the rest of the file as the encoded body, once the header is known to be good
+     */
+    private void readBody(DataInputStream input, long bodyLength) throws IOException {
+        // A short body is reported block by block, but there is nothing to check extra bytes against
+        if (bodyLength > (long) blockChecksums.length * blockSize) {
+            throw new IllegalArgumentException("Corrupt file " + fileName + ": body of " + bodyLength
+                    + " bytes is longer than its " + blockChecksums.length + " blocks");
+        }
+        fileBody = new byte[(int) bodyLength];
+        input.readFully(fileBody);
+    }
+
+    /*
+     * Reads count bytes of the header, adding them to the header checksum
+     */
+    private byte[] readHeaderBytes(DataInputStream input, int count, String what) throws IOException {
+        byte[] bytes = new byte[count];
+        try {
+            input.readFully(bytes);
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Corrupt file " + fileName + ": truncated in " + what);
+        }
+        headerChecksum.update(bytes);
+        return bytes;
+    }
+
+    /*
+     * Checks every block of the file body against the CRC32 stored for it in the header.
+     * Blocks that are missing or cut short are damaged as well.
+     */
+    private void verifyBlocks() {
+        damagedBlocks = new ArrayList<>();
+        CRC32 checksum = new CRC32();
+        for (int i = 0; i < blockChecksums.length; i++) {
+            long offset = (long) i * blockSize;
+            if (offset >= fileBody.length) {
+                damagedBlocks.add(i);
+                continue;
+            }
+            int length = (int) Math.min(blockSize, fileBody.length - offset);
+            // Only the last block may be shorter than blockSize
+            if (length < blockSize && i < blockChecksums.length - 1) {
+                damagedBlocks.add(i);
+                continue;
+            }
+            checksum.reset();
+            checksum.update(fileBody, (int) offset, length);
+            if ((int) checksum.getValue() != blockChecksums[i]) {
+                damagedBlocks.add(i);
+            }
+        }
+    }
+
     /*
      * Converts an array of bytes into the HuffmanCode stored within
      */
@@ -145,12 +262,19 @@ public class HuffmanDecode {
     /*
      * Reads the encoded bytes and converts back to the original file body contents
      */
-    private List<Integer> readFileBody(List<Integer> fileBytes) {
+    private List<Integer> readFileBody(byte[] fileBytes) {
         // Turn the body into a binary string, i.e. 11000110011100011000111...
         List<Integer> returnList = new ArrayList<>();
+        // A lone symbol has an empty code, so the body holds no bits at all
+        if (encodedBytes.containsKey("")) {
+            while (returnList.size() < fileLength) {
+                returnList.add(encodedBytes.get(""));
+            }
+            return returnList;
+        }
         StringBuilder fileBody = new StringBuilder();
-        for (int i = 0; i < fileBytes.size(); i++) {
-            fileBody.append(bytesToBinaryString(fileBytes.get(i).byteValue()));
+        for (int i = 0; i < fileBytes.length; i++) {
+            fileBody.append(bytesToBinaryString(fileBytes[i]));
         }
 
         // Break into single chars
@@ -170,6 +294,10 @@ public class HuffmanDecode {
                 }
             }
         }
+        if (returnList.size() != fileLength) {
+            throw new IllegalStateException("Corrupt file " + fileName + ": decoded " + returnList.size()
+                    + " of " + fileLength + " bytes");
+        }
         // Return the list which now holds the original file contents.
         return returnList;
     }
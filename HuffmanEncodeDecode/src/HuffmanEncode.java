@@ -3,6 +3,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
 
 /**
  * A class that reads in a file and creates a Huffman Tree used to encode the file.
@@ -12,12 +13,17 @@ import java.util.function.BiConsumer;
  */
 public class HuffmanEncode {
 
+    // Number of encoded body bytes covered by each block checksum
+    private static final int BLOCK_SIZE = 64 * 1024;
+
     private File inputFile;
     private String fileName;
     private long fileLength;
     private int numberOfSymbols;
     private List<Integer> fileBytes;
     private HashMap<Integer, String> huffmanCodes;
+    private byte[] encodedContents;
+    private CRC32 headerChecksum;
 
     /**
      * Constructs a new HuffmanEncode class
@@ -75,7 +81,10 @@ public class HuffmanEncode {
     }
 
     /**
-     * Writes out an encoded version of the file
+     * Writes out an encoded version of the file.
+     * The header (file length, symbol codes and block checksum table) is protected by its own
+     * CRC32, and the encoded body is split into blocks that each carry a CRC32, so a reader can
+     * reject a corrupt file before decoding and tell exactly which blocks are damaged.
      * @param fileName Path to the encoded file to write
      */
     public void writeToFile(String fileName){
@@ -84,8 +93,13 @@ public class HuffmanEncode {
         FileChannel channel = null;
         try {
             channel = new FileOutputStream(file).getChannel();
+            // The block checksums go in the header, so pack the body first
+            encodedContents = packContents();
+            headerChecksum = new CRC32();
             writeFileHeader(channel);
             writeSymbolCodes(channel);
+            writeBlockChecksums(channel);
+            writeHeaderChecksum(channel);
             writeContentsToFile(channel);
             channel.close();
         } catch (FileNotFoundException e) {
@@ -272,10 +286,10 @@ public class HuffmanEncode {
     private void writeFileHeader(FileChannel channel){
         try {
             byte[] fileLengthBytes = longToBytes(fileLength);
-            channel.write(ByteBuffer.wrap(fileLengthBytes));
+            writeHeaderBytes(channel, fileLengthBytes);
 
             byte[] numberOfSymbolsBytes = intToBytes(numberOfSymbols);
-            channel.write(ByteBuffer.wrap(numberOfSymbolsBytes));
+            writeHeaderBytes(channel, numberOfSymbolsBytes);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -289,38 +303,83 @@ public class HuffmanEncode {
             for (Integer key : huffmanCodes.keySet()) {
                 // Write symbol
                 byte symbol = key.byteValue();
-                channel.write(ByteBuffer.wrap(new byte[]{symbol}));
+                writeHeaderBytes(channel, new byte[]{symbol});
                 // Write out the code length
                 String code = huffmanCodes.get(key);
                 byte symbolLength = (byte)code.length();
                 // Write the code, need to align them with byte boundaries.
-                channel.write(ByteBuffer.wrap(new byte[]{symbolLength}));
+                writeHeaderBytes(channel, new byte[]{symbolLength});
                 byte[] codeBytes = binaryStringToBytes(code);
-                channel.write(ByteBuffer.wrap(codeBytes));
+                writeHeaderBytes(channel, codeBytes);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * Write out the block size, the number of blocks and a CRC32 for each block of the encoded body
+     */
+    private void writeBlockChecksums(FileChannel channel) {
+        try {
+            int numberOfBlocks = (encodedContents.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            writeHeaderBytes(channel, intToBytes(BLOCK_SIZE));
+            writeHeaderBytes(channel, intToBytes(numberOfBlocks));
+            CRC32 blockChecksum = new CRC32();
+            for (int i = 0; i < numberOfBlocks; i++) {
+                int offset = i * BLOCK_SIZE;
+                blockChecksum.reset();
+                blockChecksum.update(encodedContents, offset, Math.min(BLOCK_SIZE, encodedContents.length - offset));
+                writeHeaderBytes(channel, intToBytes((int) blockChecksum.getValue()));
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /*
+     * Write out the CRC32 of everything written so far, closing off the header
+     */
+    private void writeHeaderChecksum(FileChannel channel) {
+        try {
+            channel.write(ByteBuffer.wrap(intToBytes((int) headerChecksum.getValue())));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /*
      * Write out the bytes from the original file using the huffman code symbols.
      */
     private void writeContentsToFile(FileChannel channel) {
         try {
-            StringBuilder stringBuilder = new StringBuilder();
-            // Pack in all the codes with no gaps
-            for (int b : fileBytes) {
-                String code = huffmanCodes.get(b);
-                stringBuilder.append(code);
-            }
-            byte[] encodedBytes = binaryStringToBytes(stringBuilder.toString());
-            channel.write(ByteBuffer.wrap(encodedBytes));
+            channel.write(ByteBuffer.wrap(encodedContents));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /*
+     * Pack the huffman codes for every byte of the original file into as many bytes as needed
+     */
+    private byte[] packContents() {
+        StringBuilder stringBuilder = new StringBuilder();
+        // Pack in all the codes with no gaps
+        for (int b : fileBytes) {
+            String code = huffmanCodes.get(b);
+            stringBuilder.append(code);
+        }
+        return binaryStringToBytes(stringBuilder.toString());
+    }
+
+    /*
+     * Write out part of the header, adding it to the header checksum
+     */
+    private void writeHeaderBytes(FileChannel channel, byte[] bytes) throws IOException {
+        headerChecksum.update(bytes);
+        channel.write(ByteBuffer.wrap(bytes));
+    }
+
     /*
      * Print the Huffman code for this node.
      */
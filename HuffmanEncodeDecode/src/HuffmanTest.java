@@ -4,6 +4,10 @@
  * and open the template in the editor.
  */
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.CRC32;
 
 /**
  *
@@ -14,7 +18,7 @@ public class HuffmanTest {
     /**
      * @param args the command line arguments
      */
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) throws IOException {
         HuffmanEncode huffy = new HuffmanEncode("foxtext.txt");
         System.out.println("Encoding File --");
         huffy.encodeByteStream();
@@ -22,6 +26,94 @@ public class HuffmanTest {
 
         System.out.println("Decoding File --");
         HuffmanDecode huffD = new HuffmanDecode("foxtext.huf");
+        System.out.println("Damaged blocks: " + huffD.getDamagedBlocks());
         huffD.readFromFile("foxtext_decoded.txt");
+
+        // Build a larger input out of foxtext.txt so the body spans several checksum blocks
+        byte[] foxtext = Files.readAllBytes(Paths.get("foxtext.txt"));
+        try (FileOutputStream output = new FileOutputStream("foxtext_large.txt")) {
+            for (int i = 0; i < 4000; i++) {
+                output.write(foxtext);
+            }
+        }
+        huffy = new HuffmanEncode("foxtext_large.txt");
+        huffy.encodeByteStream();
+        huffy.writeToFile("foxtext_large.huf");
+
+        System.out.println("Corrupt Files --");
+        byte[] encoded = Files.readAllBytes(Paths.get("foxtext_large.huf"));
+        // Flip a bit of the file length, which only the header checksum can catch
+        byte[] corrupt = encoded.clone();
+        corrupt[0] ^= 1;
+        openCorruptFile("Flipped file length", corrupt);
+        // Flip a bit of the symbol count, throwing off the rest of the header
+        corrupt = encoded.clone();
+        corrupt[Long.BYTES + Integer.BYTES - 1] ^= 1;
+        openCorruptFile("Flipped symbol count", corrupt);
+        // Flip a bit in the last byte of the body
+        corrupt = encoded.clone();
+        corrupt[corrupt.length - 1] ^= 1;
+        openCorruptFile("Flipped body byte", corrupt);
+        // Drop the end of the body
+        openCorruptFile("Truncated body", Arrays.copyOf(encoded, encoded.length - 70000));
+        // Cut off partway through the symbol table
+        openCorruptFile("Truncated header", Arrays.copyOf(encoded, 20));
+
+        System.out.println("Single Symbol File --");
+        try (FileOutputStream output = new FileOutputStream("single.txt")) {
+            output.write("aaaaaaa".getBytes());
+        }
+        huffy = new HuffmanEncode("single.txt");
+        huffy.encodeByteStream();
+        huffy.writeToFile("single.huf");
+        new HuffmanDecode("single.huf").readFromFile("single_decoded.txt");
+        System.out.println(new String(Files.readAllBytes(Paths.get("single_decoded.txt"))));
+
+        measureChecksumOverhead("foxtext_large.huf");
+    }
+
+    /*
+     * Writes out a corrupted encoded file and shows how HuffmanDecode rejects it
+     */
+    private static void openCorruptFile(String description, byte[] contents) throws IOException {
+        Files.write(Paths.get("corrupt.huf"), contents);
+        try {
+            HuffmanDecode huffD = new HuffmanDecode("corrupt.huf");
+            System.out.println(description + ": damaged blocks " + huffD.getDamagedBlocks());
+            huffD.readFromFile("corrupt_decoded.txt");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(description + ": " + e.getMessage());
+        }
+    }
+
+    /*
+     * Compares the time spent checksumming an encoded file with the time spent decoding it,
+     * after warming up the JVM
+     */
+    private static void measureChecksumOverhead(String encodedFileName) throws IOException {
+        byte[] encoded = Files.readAllBytes(Paths.get(encodedFileName));
+        HuffmanDecode huffD = new HuffmanDecode(encodedFileName);
+        CRC32 checksum = new CRC32();
+        int warmups = 5;
+        int runs = 10;
+        long checksumTime = 0;
+        long decodeTime = 0;
+        for (int i = 0; i < warmups + runs; i++) {
+            long start = System.nanoTime();
+            // Checksum the whole file, an upper bound on what opening it verifies
+            checksum.reset();
+            checksum.update(encoded, 0, encoded.length);
+            long checksummed = System.nanoTime();
+            huffD.readFromFile("foxtext_large_decoded.txt");
+            long decoded = System.nanoTime();
+            if (i >= warmups) {
+                checksumTime += checksummed - start;
+                decodeTime += decoded - checksummed;
+            }
+        }
+        System.out.println("Checksum Overhead --");
+        System.out.println("Checksums: " + checksumTime / runs + " ns, decode: " + decodeTime / runs
+                + " ns (" + String.format("%.2f", 100.0 * checksumTime / decodeTime) + "%) over "
+                + encoded.length + " bytes");
     }
 }